@@ -0,0 +1,143 @@
+package com.erfangc.dynamodb.elasticsearch;
+
+import com.erfangc.dynamodb.elasticsearch.converter.ByteBufferNode;
+import com.erfangc.dynamodb.elasticsearch.converter.SetNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * {@link ContentHash} computes a stable digest of a converted DynamoDB image
+ * <p>
+ * The digest is stored alongside every document indexed by {@link Replicator} under {@link #FIELD}, so that
+ * {@link Reconciler} can detect divergent documents without pulling their full source back from Elasticsearch.
+ * Object fields and set elements are sorted before hashing because attribute order in a DynamoDB image, and element
+ * order in a DynamoDB set, are not guaranteed
+ */
+public class ContentHash {
+
+    public static final String FIELD = "replicator_hash";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentHash() {
+    }
+
+    /**
+     * @param payload the JSON produced by the converter, without the {@link #FIELD} attribute
+     * @return the hex encoded SHA-256 digest of the canonical form of the payload
+     */
+    public static String of(JsonNode payload) {
+        byte[] bytes = digest(payload);
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param payload the JSON produced by the converter, without the {@link #FIELD} attribute
+     * @return the raw SHA-256 digest of the canonical form of the payload
+     */
+    public static byte[] digest(JsonNode payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // the canonical form is streamed into the digest, binary attributes are never buffered in full
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(new DigestOutputStream(NULL_STREAM, digest))) {
+                writeCanonical(generator, payload);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param stored the value of {@link #FIELD} in a document source
+     * @return the raw digest it encodes, or null if it is missing or not a hex encoded SHA-256 digest
+     */
+    public static byte[] decode(Object stored) {
+        if (!(stored instanceof String) || ((String) stored).length() != 64) {
+            return null;
+        }
+        String hex = (String) stored;
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * writes the payload with object fields sorted, and the elements of DynamoDB sets sorted as DynamoDB does not
+     * preserve their order either
+     */
+    private static void writeCanonical(JsonGenerator generator, JsonNode node) throws IOException {
+        if (node.isObject()) {
+            Iterator<String> fieldNames = node.fieldNames();
+            TreeSet<String> keys = new TreeSet<>();
+            while (fieldNames.hasNext()) {
+                keys.add(fieldNames.next());
+            }
+            generator.writeStartObject();
+            for (String key : keys) {
+                generator.writeFieldName(key);
+                writeCanonical(generator, node.get(key));
+            }
+            generator.writeEndObject();
+        } else if (node.isArray()) {
+            Iterable<JsonNode> elements = node;
+            if (node instanceof SetNode) {
+                List<JsonNode> sorted = new ArrayList<>();
+                node.forEach(sorted::add);
+                sorted.sort(ContentHash::compareSetElements);
+                elements = sorted;
+            }
+            generator.writeStartArray();
+            for (JsonNode element : elements) {
+                writeCanonical(generator, element);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeTree(node);
+        }
+    }
+
+    /**
+     * orders set elements by their serialized form, except binary elements which are compared byte by byte rather
+     * than base64 encoded just to be sorted
+     */
+    private static int compareSetElements(JsonNode a, JsonNode b) {
+        if (a instanceof ByteBufferNode && b instanceof ByteBufferNode) {
+            return ((ByteBufferNode) a).byteBufferValue().compareTo(((ByteBufferNode) b).byteBufferValue());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+}
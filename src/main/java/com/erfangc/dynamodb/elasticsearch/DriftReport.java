@@ -0,0 +1,109 @@
+package com.erfangc.dynamodb.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DriftReport {
+    private String table;
+    private String index;
+    private String timestamp;
+    private long scanned;
+    private List<String> missing = new ArrayList<>();
+    private List<String> extra = new ArrayList<>();
+    private List<String> divergent = new ArrayList<>();
+    private List<String> unconvertible = new ArrayList<>();
+    private int repaired;
+
+    public String getTable() {
+        return table;
+    }
+
+    public DriftReport setTable(String table) {
+        this.table = table;
+        return this;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public DriftReport setIndex(String index) {
+        this.index = index;
+        return this;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public DriftReport setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+        return this;
+    }
+
+    public long getScanned() {
+        return scanned;
+    }
+
+    public DriftReport setScanned(long scanned) {
+        this.scanned = scanned;
+        return this;
+    }
+
+    /**
+     * ids present in DynamoDB but not in Elasticsearch
+     */
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    public DriftReport setMissing(List<String> missing) {
+        this.missing = missing;
+        return this;
+    }
+
+    /**
+     * ids present in Elasticsearch but not in DynamoDB
+     */
+    public List<String> getExtra() {
+        return extra;
+    }
+
+    public DriftReport setExtra(List<String> extra) {
+        this.extra = extra;
+        return this;
+    }
+
+    /**
+     * ids present on both sides whose stored hash does not match the hash of the DynamoDB item
+     */
+    public List<String> getDivergent() {
+        return divergent;
+    }
+
+    public DriftReport setDivergent(List<String> divergent) {
+        this.divergent = divergent;
+        return this;
+    }
+
+    /**
+     * ids of DynamoDB items the converter rejected, these are neither compared nor repaired
+     */
+    public List<String> getUnconvertible() {
+        return unconvertible;
+    }
+
+    public DriftReport setUnconvertible(List<String> unconvertible) {
+        this.unconvertible = unconvertible;
+        return this;
+    }
+
+    public int getRepaired() {
+        return repaired;
+    }
+
+    public DriftReport setRepaired(int repaired) {
+        this.repaired = repaired;
+        return this;
+    }
+}
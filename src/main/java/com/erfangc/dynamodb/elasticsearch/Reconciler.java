@@ -0,0 +1,528 @@
+package com.erfangc.dynamodb.elasticsearch;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.erfangc.dynamodb.elasticsearch.converter.JacksonConverterException;
+import com.erfangc.dynamodb.elasticsearch.converter.JacksonConverterImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.lang.Integer.parseInt;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * {@link Reconciler} detects and repairs drift between a DynamoDB table and the Elasticsearch index {@link Replicator} feeds
+ * <p>
+ * Records can be lost by the replicator, for example when the converter rejects an image or a bulk item fails with
+ * anything other than a 400. The table is scanned in parallel segments and every item is hashed with {@link ContentHash}
+ * using the same converter as {@link Replicator}. The index is then streamed in _id order with search_after, fetching only
+ * the stored {@link ContentHash#FIELD} and the key attributes, and the two sides are compared
+ * <p>
+ * The scan keeps one id and raw 32 byte digest per item in memory until the index has been streamed. With the map
+ * entry and the id string that comes to about 130 bytes plus twice the id length of heap per item on Java 8. Keys are
+ * rebuilt from the ids rather than kept, except for the few ids that cannot be split unambiguously. Sorting on _id loads _id fielddata on the cluster, which is expensive on large indices and
+ * deprecated from Elasticsearch 7.6 on
+ * <p>
+ * When repair is requested, only the missing, extra and divergent documents are written back through a bulk request.
+ * Each of them is re-read first, with consistent BatchGetItem reads of up to 100 keys: a document is only deleted if
+ * its item no longer exists, and is otherwise re-indexed from the current item, so writes that landed during the run
+ * are neither lost nor overwritten with stale data
+ */
+public class Reconciler {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    /**
+     * most keys a single BatchGetItem call accepts
+     */
+    private static final int BATCH_GET_LIMIT = 100;
+    /**
+     * most segments a parallel Scan can be split into
+     */
+    private static final int MAX_SEGMENTS = 1000000;
+    /**
+     * default index.max_result_window, no search page can be larger
+     */
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    private final AmazonDynamoDB dynamoDB;
+    private final RestHighLevelClient client;
+    private final String table;
+    private final String index;
+    private final int totalSegments;
+    private final int pageSize;
+    /**
+     * key attribute names in the order {@link Replicator#getId} joins them
+     */
+    private final List<String> keyNames;
+    /**
+     * key attribute name to its S, N or B type
+     */
+    private final Map<String, String> keyTypes;
+
+    public Reconciler(AmazonDynamoDB dynamoDB,
+                      RestHighLevelClient client,
+                      String table,
+                      String index,
+                      int totalSegments,
+                      int pageSize) {
+        this.dynamoDB = dynamoDB;
+        this.client = client;
+        this.table = table;
+        this.index = index;
+        this.totalSegments = totalSegments;
+        this.pageSize = pageSize;
+        // the key schema cannot change over the life of a table, so it is described once and shared by concurrent runs
+        TableDescription description = dynamoDB.describeTable(table).getTable();
+        this.keyNames = description
+                .getKeySchema()
+                .stream()
+                .map(KeySchemaElement::getAttributeName)
+                .sorted()
+                .collect(toList());
+        this.keyTypes = description
+                .getAttributeDefinitions()
+                .stream()
+                .collect(toMap(AttributeDefinition::getAttributeName, AttributeDefinition::getAttributeType));
+    }
+
+    /**
+     * compares the table against the index
+     *
+     * @param repair whether to write the differences back to Elasticsearch
+     * @return the ids found to be missing, extra or divergent
+     */
+    public DriftReport reconcile(boolean repair) throws IOException, InterruptedException {
+        Map<String, byte[]> hashes = new ConcurrentHashMap<>();
+        Map<String, Map<String, AttributeValue>> explicitKeys = new ConcurrentHashMap<>();
+        Set<String> unconvertible = ConcurrentHashMap.newKeySet();
+        AtomicLong scanned = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(totalSegments);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int segment = 0; segment < totalSegments; segment++) {
+                final int s = segment;
+                futures.add(executor.submit(() -> scanSegment(s, hashes, explicitKeys, unconvertible, scanned)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to scan table " + table, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println("Scanned " + scanned.get() + " items from " + table + " in " + totalSegments + " segments");
+
+        DriftReport report = new DriftReport()
+                .setTable(table)
+                .setIndex(index)
+                .setTimestamp(Instant.now().toString())
+                .setScanned(scanned.get());
+
+        List<String> includes = new ArrayList<>(keyNames);
+        includes.add(ContentHash.FIELD);
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .fetchSource(includes.toArray(new String[0]), null)
+                .sort("_id", SortOrder.ASC)
+                .size(pageSize);
+        while (true) {
+            SearchResponse response = client.search(new SearchRequest(index).source(source), RequestOptions.DEFAULT);
+            SearchHit[] hits = response.getHits().getHits();
+            if (hits.length == 0) {
+                break;
+            }
+            for (SearchHit hit : hits) {
+                String id = hit.getId();
+                if (unconvertible.contains(id)) {
+                    continue;
+                }
+                // matched ids are dropped as we go, whatever is left once the index is exhausted is missing
+                byte[] expected = hashes.remove(id);
+                if (expected == null) {
+                    report.getExtra().add(id);
+                    Map<String, AttributeValue> key = getKey(id, hit.getSourceAsMap());
+                    if (key != null) {
+                        explicitKeys.put(id, key);
+                    }
+                } else if (!Arrays.equals(expected, ContentHash.decode(hit.getSourceAsMap().get(ContentHash.FIELD)))) {
+                    report.getDivergent().add(id);
+                }
+            }
+            source.searchAfter(hits[hits.length - 1].getSortValues());
+        }
+        report.getMissing().addAll(hashes.keySet());
+        report.getUnconvertible().addAll(unconvertible);
+        Collections.sort(report.getMissing());
+        Collections.sort(report.getUnconvertible());
+
+        System.out.println(
+                "Drift detected: missing=" + report.getMissing().size()
+                        + " extra=" + report.getExtra().size()
+                        + " divergent=" + report.getDivergent().size()
+                        + " unconvertible=" + report.getUnconvertible().size()
+        );
+        if (repair) {
+            report.setRepaired(repair(report, explicitKeys));
+        }
+        return report;
+    }
+
+    private void scanSegment(int segment,
+                             Map<String, byte[]> hashes,
+                             Map<String, Map<String, AttributeValue>> explicitKeys,
+                             Set<String> unconvertible,
+                             AtomicLong scanned) {
+        final JacksonConverterImpl converter = new JacksonConverterImpl();
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        do {
+            ScanRequest scanRequest = new ScanRequest()
+                    .withTableName(table)
+                    .withSegment(segment)
+                    .withTotalSegments(totalSegments)
+                    .withExclusiveStartKey(exclusiveStartKey);
+            ScanResult result = dynamoDB.scan(scanRequest);
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                Map<String, AttributeValue> key = new HashMap<>();
+                for (String keyName : keyNames) {
+                    key.put(keyName, item.get(keyName));
+                }
+                String id = Replicator.getId(key);
+                try {
+                    hashes.put(id, ContentHash.digest(converter.mapToJsonObject(item)));
+                    if (!key.equals(getKey(id, null))) {
+                        explicitKeys.put(id, key);
+                    }
+                } catch (JacksonConverterException e) {
+                    unconvertible.add(id);
+                    System.err.println("Failure detail: id=" + id + " message=" + e.getMessage());
+                }
+            }
+            scanned.addAndGet(result.getCount());
+            exclusiveStartKey = result.getLastEvaluatedKey();
+        } while (exclusiveStartKey != null && !exclusiveStartKey.isEmpty());
+    }
+
+    /**
+     * rebuilds the key an id was derived from by {@link Replicator#getId}
+     * <p>
+     * Only S values can contain the ':' separator, so an id splits unambiguously unless both key attributes are S.
+     * In that case the values are taken from the document source when one is given, otherwise the id is split at its
+     * first ':' and the caller has to check the result
+     *
+     * @param id     the document id
+     * @param source the document source holding the key attributes, may be null
+     * @return the key, or null if it cannot be rebuilt
+     */
+    private Map<String, AttributeValue> getKey(String id, Map<String, Object> source) {
+        List<String> parts = new ArrayList<>();
+        if (keyNames.size() == 1) {
+            parts.add(id);
+        } else {
+            boolean firstIsS = "S".equals(keyTypes.get(keyNames.get(0)));
+            boolean secondIsS = "S".equals(keyTypes.get(keyNames.get(1)));
+            if (firstIsS && secondIsS && source != null) {
+                Object first = source.get(keyNames.get(0));
+                Object second = source.get(keyNames.get(1));
+                if (!(first instanceof String) || !(second instanceof String) || !id.equals(first + ":" + second)) {
+                    return null;
+                }
+                parts.add((String) first);
+                parts.add((String) second);
+            } else {
+                int separator = firstIsS && !secondIsS ? id.lastIndexOf(':') : id.indexOf(':');
+                if (separator < 0) {
+                    return null;
+                }
+                parts.add(id.substring(0, separator));
+                parts.add(id.substring(separator + 1));
+            }
+        }
+        Map<String, AttributeValue> key = new HashMap<>();
+        for (int i = 0; i < keyNames.size(); i++) {
+            String keyName = keyNames.get(i);
+            String part = parts.get(i);
+            switch (keyTypes.get(keyName)) {
+                case "S":
+                    key.put(keyName, new AttributeValue().withS(part));
+                    break;
+                case "N":
+                    // ids written before N keys were supported read "null", which DynamoDB rejects as a key
+                    try {
+                        new BigDecimal(part);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    key.put(keyName, new AttributeValue().withN(part));
+                    break;
+                case "B":
+                    try {
+                        key.put(keyName, new AttributeValue().withB(ByteBuffer.wrap(Base64.getDecoder().decode(part))));
+                    } catch (IllegalArgumentException e) {
+                        return null;
+                    }
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return key;
+    }
+
+    private int repair(DriftReport report, Map<String, Map<String, AttributeValue>> explicitKeys)
+            throws IOException, InterruptedException {
+        Set<String> extra = new HashSet<>(report.getExtra());
+        List<String> ids = new ArrayList<>(report.getMissing());
+        ids.addAll(report.getDivergent());
+        ids.addAll(report.getExtra());
+        int repaired = 0;
+        Map<Map<String, AttributeValue>, String> batch = new HashMap<>();
+        List<DocWriteRequest<?>> requests = new ArrayList<>();
+        for (String id : ids) {
+            // the key of an extra comes from its document only, guessing it from the id could delete a live document
+            Map<String, AttributeValue> key = explicitKeys.containsKey(id) || extra.contains(id)
+                    ? explicitKeys.get(id)
+                    : getKey(id, null);
+            if (key == null) {
+                System.err.println("Failure detail: id=" + id + " message=cannot rebuild the DynamoDB key, skipping repair");
+                continue;
+            }
+            batch.put(key, id);
+            if (batch.size() == BATCH_GET_LIMIT) {
+                requests.addAll(reread(batch));
+                batch.clear();
+                repaired += executeBulkRequests(requests, false);
+            }
+        }
+        if (!batch.isEmpty()) {
+            requests.addAll(reread(batch));
+        }
+        repaired += executeBulkRequests(requests, true);
+        System.out.println("Repaired " + repaired + " documents in " + index);
+        return repaired;
+    }
+
+    /**
+     * re-reads a batch of drifted items with a consistent read, retrying unprocessed keys with backoff
+     *
+     * @param batch keys to re-read, mapped to their document ids
+     * @return an index request for every item that still exists, and a delete request for every item that does not
+     */
+    private List<DocWriteRequest<?>> reread(Map<Map<String, AttributeValue>, String> batch) throws IOException, InterruptedException {
+        final JacksonConverterImpl converter = new JacksonConverterImpl();
+        List<DocWriteRequest<?>> requests = new ArrayList<>();
+        Set<Map<String, AttributeValue>> absent = new HashSet<>(batch.keySet());
+        Map<String, KeysAndAttributes> unprocessed = Collections.singletonMap(
+                table,
+                new KeysAndAttributes().withKeys(batch.keySet()).withConsistentRead(true)
+        );
+        try {
+            for (int attempt = 0; unprocessed != null && !unprocessed.isEmpty(); attempt++) {
+                if (attempt > 0) {
+                    Thread.sleep(Math.min(50L << attempt, 5000L));
+                }
+                BatchGetItemResult result = dynamoDB.batchGetItem(new BatchGetItemRequest().withRequestItems(unprocessed));
+                for (Map<String, AttributeValue> item : result.getResponses().getOrDefault(table, Collections.emptyList())) {
+                    Map<String, AttributeValue> key = new HashMap<>();
+                    for (String keyName : keyNames) {
+                        key.put(keyName, item.get(keyName));
+                    }
+                    String id = batch.get(key);
+                    if (id == null || !absent.remove(key)) {
+                        continue;
+                    }
+                    // re-indexed rather than deleted when an extra turns out to be an item written after its segment was scanned
+                    try {
+                        requests.add(Replicator.indexRequest(index, id, converter.mapToJsonObject(item)));
+                    } catch (JacksonConverterException e) {
+                        System.err.println("Failure detail: id=" + id + " message=" + e.getMessage());
+                    }
+                }
+                unprocessed = result.getUnprocessedKeys();
+            }
+        } catch (AmazonServiceException e) {
+            System.err.println("Failure detail: ids=" + batch.values() + " message=" + e.getMessage());
+            return Collections.emptyList();
+        }
+        for (Map<String, AttributeValue> key : absent) {
+            // deleted since the scan or never existed, the REMOVE event may have been dropped
+            requests.add(new DeleteRequest(index).id(batch.get(key)));
+        }
+        return requests;
+    }
+
+    /**
+     * sends the pending requests in bulk requests of {@link #pageSize}, removing them from the list
+     *
+     * @param requests the pending requests
+     * @param all      whether to also send a last, partial bulk request
+     * @return the number of requests that succeeded
+     */
+    private int executeBulkRequests(List<DocWriteRequest<?>> requests, boolean all) throws IOException {
+        int succeeded = 0;
+        while (requests.size() >= pageSize || (all && !requests.isEmpty())) {
+            List<DocWriteRequest<?>> page = requests.subList(0, Math.min(pageSize, requests.size()));
+            BulkRequest bulkRequest = new BulkRequest();
+            page.forEach(bulkRequest::add);
+            succeeded += executeBulkRequest(bulkRequest);
+            page.clear();
+        }
+        return succeeded;
+    }
+
+    private int executeBulkRequest(BulkRequest request) throws IOException {
+        BulkResponse responses = client.bulk(request, RequestOptions.DEFAULT);
+        int succeeded = 0;
+        for (BulkItemResponse itemResponse : responses.getItems()) {
+            if (itemResponse.isFailed()) {
+                System.err.println(
+                        "Failure detail: id=" + itemResponse.getId()
+                                + " message=" + itemResponse.getFailureMessage()
+                                + " index=" + itemResponse.getIndex());
+            } else {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * runs a reconciliation using the same ES_* environment variables as {@link Replicator}, plus
+     * <ul>
+     * <li>DYNAMODB_TABLE the table to compare against</li>
+     * <li>DYNAMODB_ENDPOINT optional endpoint override, e.g. http://localhost:8000 for DynamoDB Local</li>
+     * <li>RECONCILE_SEGMENTS number of parallel scan segments, defaults to 4</li>
+     * <li>RECONCILE_PAGE_SIZE search and bulk page size up to 10000, the default index.max_result_window, defaults to 1000</li>
+     * <li>RECONCILE_REPAIR set to true to write the differences back, otherwise only a report is printed</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> missingEnvVars = Stream.of(
+                "DYNAMODB_TABLE",
+                "ES_HOST",
+                "ES_PORT",
+                "ES_SCHEME",
+                "ES_INDEX"
+        )
+                .filter(envvar -> System.getenv(envvar) == null)
+                .collect(toList());
+        if (!missingEnvVars.isEmpty()) {
+            System.out.println("Missing environment variables: " + missingEnvVars.toString());
+            System.exit(1);
+        }
+        List<String> invalidEnvVars = new ArrayList<>();
+        int segments = getIntEnv("RECONCILE_SEGMENTS", 4, MAX_SEGMENTS, invalidEnvVars);
+        int pageSize = getIntEnv("RECONCILE_PAGE_SIZE", 1000, MAX_PAGE_SIZE, invalidEnvVars);
+        if (!invalidEnvVars.isEmpty()) {
+            System.out.println("Invalid environment variables: " + invalidEnvVars.toString());
+            System.exit(1);
+        }
+
+        String endpoint = System.getenv("DYNAMODB_ENDPOINT");
+        AmazonDynamoDBClientBuilder dynamoDBBuilder = AmazonDynamoDBClientBuilder.standard();
+        if (endpoint != null) {
+            String region = System.getenv("AWS_REGION") != null ? System.getenv("AWS_REGION") : "us-east-1";
+            dynamoDBBuilder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region));
+        }
+
+        RestClientBuilder restClient = RestClient.builder(new HttpHost(
+                System.getenv("ES_HOST"),
+                parseInt(System.getenv("ES_PORT")),
+                System.getenv("ES_SCHEME")
+        ));
+        String username = System.getenv("ES_USERNAME");
+        if (username != null) {
+            BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, System.getenv("ES_PASSWORD")));
+            restClient.setHttpClientConfigCallback(httpAsyncClientBuilder -> httpAsyncClientBuilder.setDefaultCredentialsProvider(credentialsProvider));
+        }
+
+        try (RestHighLevelClient client = new RestHighLevelClient(restClient)) {
+            Reconciler reconciler = new Reconciler(
+                    dynamoDBBuilder.build(),
+                    client,
+                    System.getenv("DYNAMODB_TABLE"),
+                    System.getenv("ES_INDEX"),
+                    segments,
+                    pageSize
+            );
+            DriftReport report = reconciler.reconcile(Boolean.parseBoolean(System.getenv("RECONCILE_REPAIR")));
+            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        }
+    }
+
+    /**
+     * @param name         the environment variable
+     * @param defaultValue the value when the variable is not set
+     * @param max          the largest value accepted, the smallest being 1
+     * @param invalid      collects a description of the variable if its value is not accepted
+     */
+    private static int getIntEnv(String name, int defaultValue, int max, List<String> invalid) {
+        String value = System.getenv(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = parseInt(value.trim());
+            if (parsed >= 1 && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        invalid.add(name + "=" + value + " must be between 1 and " + max);
+        return defaultValue;
+    }
+}
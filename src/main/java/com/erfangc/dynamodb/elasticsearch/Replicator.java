@@ -12,6 +12,7 @@ import com.erfangc.dynamodb.elasticsearch.converter.JacksonConverterImpl;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -30,10 +31,13 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.rest.RestStatus;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Stream;
 
 import static java.lang.Integer.parseInt;
@@ -110,14 +114,14 @@ public class Replicator {
                 create a primary id from record
                  */
                 System.out.println(streamRecord);
-                String id = getId(streamRecord);
+                String id = getId(streamRecord.getKeys());
                 if (EventType.valueOf(eventName) == EventType.INSERT || EventType.valueOf(eventName) == EventType.MODIFY) {
                     final Map<String, AttributeValue> newImage = streamRecord.getNewImage();
                     if (newImage == null) {
                         throw new RuntimeException("NewImage cannot be null, sequenceNumber:" + streamRecord.getSequenceNumber());
                     }
                     JsonNode payload = converter.mapToJsonObject(newImage);
-                    final IndexRequest indexRequest = new IndexRequest(INDEX).id(id).source(payload.toString(), XContentType.JSON);
+                    final IndexRequest indexRequest = indexRequest(INDEX, id, payload);
                     bulkRequest.add(indexRequest);
                     System.out.println("IndexRequest: " + indexRequest.toString());
                 } else if (EventType.valueOf(eventName) == EventType.REMOVE) {
@@ -127,7 +131,7 @@ public class Replicator {
                 }
             } catch (JacksonConverterException e) {
                 // JSON conversion exceptions will not succeed on retry, therefore do not throw an error
-                String id = getId(record.getDynamodb());
+                String id = getId(record.getDynamodb().getKeys());
                 System.err.println("Failed to process record due to serialization issues");
                 System.err.println(
                         "Failure detail: id=" + id
@@ -140,15 +144,46 @@ public class Replicator {
         System.out.println("Executed bulk request for " + bulkRequest.requests().size() + " requests to Elasticsearch");
     }
 
-    private String getId(StreamRecord streamRecord) {
-        return streamRecord
-                .getKeys()
+    /**
+     * joins the key attribute values in key name order, so the id does not depend on the order the Keys were deserialized in
+     * <p>
+     * Earlier versions joined the S values in Keys iteration order, so documents of tables with a composite key, or with
+     * an N or B key (indexed under "null"), were written under different ids. Neither REMOVE events nor {@link Reconciler}
+     * can find those documents again, so such indices have to be rebuilt after upgrading
+     */
+    static String getId(Map<String, AttributeValue> keys) {
+        return new TreeMap<>(keys)
                 .values()
                 .stream()
-                .map(AttributeValue::getS)
+                .map(Replicator::getIdPart)
                 .collect(joining(":"));
     }
 
+    private static String getIdPart(AttributeValue key) {
+        if (key.getS() != null) {
+            return key.getS();
+        } else if (key.getN() != null) {
+            return key.getN();
+        } else if (key.getB() != null) {
+            ByteBuffer buffer = key.getB().duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return Base64.getEncoder().encodeToString(bytes);
+        }
+        throw new IllegalArgumentException("Key attributes must be of type S, N or B, but received " + key);
+    }
+
+    /**
+     * builds the {@link IndexRequest} for a converted image, stamping it with its {@link ContentHash}
+     * so that {@link Reconciler} can later detect drift
+     */
+    static IndexRequest indexRequest(String index, String id, JsonNode payload) throws JsonProcessingException {
+        String hash = ContentHash.of(payload);
+        ((ObjectNode) payload).put(ContentHash.FIELD, hash);
+        // serialize through the generator so binary attributes are base64 encoded straight from their buffers
+        return new IndexRequest(index).id(id).source(objectMapper.writeValueAsBytes(payload), XContentType.JSON);
+    }
+
     private void executeElasticsearchRESTRequest(BulkRequest request) throws IOException {
         BulkResponse responses = client.bulk(request, RequestOptions.DEFAULT);
         List<BadRequest> badRequests = new ArrayList<>();
@@ -0,0 +1,97 @@
+package com.erfangc.dynamodb.elasticsearch.converter;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.ValueNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary JSON node backed by the {@link ByteBuffer} of a DynamoDB B attribute.
+ * <p>
+ * Unlike {@link com.fasterxml.jackson.databind.node.BinaryNode} the buffer is not copied into a byte[]; serialization
+ * base64-encodes straight from the buffer into the {@link JsonGenerator}.
+ */
+public class ByteBufferNode extends ValueNode {
+
+    /**
+     * Binary value, positioned at the first byte.
+     */
+    private final ByteBuffer value;
+
+    /**
+     * Constructs a {@link ByteBufferNode}.
+     *
+     * @param value
+     *            Buffer to wrap, its position and limit are left untouched
+     */
+    public ByteBufferNode(final ByteBuffer value) {
+        this.value = value.duplicate();
+    }
+
+    /**
+     * @return A read-only view of the wrapped buffer
+     */
+    public ByteBuffer byteBufferValue() {
+        return value.asReadOnlyBuffer();
+    }
+
+    @Override
+    public JsonNodeType getNodeType() {
+        return JsonNodeType.BINARY;
+    }
+
+    @Override
+    public JsonToken asToken() {
+        return JsonToken.VALUE_EMBEDDED_OBJECT;
+    }
+
+    /**
+     * Copies the buffer, prefer {@link #byteBufferValue()} or serializing the node.
+     */
+    @Override
+    public byte[] binaryValue() {
+        final byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String asText() {
+        return Base64Variants.getDefaultVariant().encode(binaryValue(), false);
+    }
+
+    @Override
+    public void serialize(final JsonGenerator generator, final SerializerProvider provider) throws IOException {
+        final Base64Variant variant = provider == null
+                ? Base64Variants.getDefaultVariant()
+                : provider.getConfig().getBase64Variant();
+        final ByteBuffer buffer = value.duplicate();
+        if (buffer.hasArray()) {
+            generator.writeBinary(variant, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            generator.writeBinary(variant, new ByteBufferBackedInputStream(buffer), buffer.remaining());
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o == this || (o instanceof ByteBufferNode && ((ByteBufferNode) o).value.equals(value));
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return '"' + asText() + '"';
+    }
+}
@@ -7,6 +7,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 /**
  * Utility for transforming between Jackson JSON and DynamoDB representations.
+ * <p>
+ * B attributes become {@link ByteBufferNode}s, serialized as base64 strings. SS, NS and BS attributes become
+ * {@link SetNode}s, serialized as arrays. Both convert back to their original DynamoDB type; any other binary node
+ * becomes a B attribute and any other array an L attribute.
  */
 public interface JacksonConverter {
 
@@ -6,6 +6,8 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -59,7 +61,12 @@ public class JacksonConverterImpl implements JacksonConverter {
                 return new AttributeValue().withNULL(true);
             case START_OBJECT:
                 return new AttributeValue().withM(jsonObjectToMap(node, depth));
+            case VALUE_EMBEDDED_OBJECT:
+                return new AttributeValue().withB(getByteBuffer(node));
             case START_ARRAY:
+                if (node instanceof SetNode) {
+                    return getSetAttributeValue((SetNode) node);
+                }
                 return new AttributeValue().withL(jsonArrayToList(node, depth));
             default:
                 throw new JacksonConverterException("Unknown node type: " + node);
@@ -79,17 +86,27 @@ public class JacksonConverterImpl implements JacksonConverter {
         if (av.getS() != null) {
             return JsonNodeFactory.instance.textNode(av.getS());
         } else if (av.getN() != null) {
-            try {
-                return JsonNodeFactory.instance.numberNode(Integer.parseInt(av.getN()));
-            } catch (final NumberFormatException e) {
-                // Not an integer
-                try {
-                    return JsonNodeFactory.instance.numberNode(Float.parseFloat(av.getN()));
-                } catch (final NumberFormatException e2) {
-                    // Not a number
-                    throw new JacksonConverterException(e.getMessage());
-                }
+            return getNumberNode(av.getN());
+        } else if (av.getB() != null) {
+            return new ByteBufferNode(av.getB());
+        } else if (av.getSS() != null) {
+            final SetNode node = new SetNode(SetNode.SetType.SS);
+            for (final String value : av.getSS()) {
+                node.add(value);
+            }
+            return node;
+        } else if (av.getNS() != null) {
+            final SetNode node = new SetNode(SetNode.SetType.NS);
+            for (final String value : av.getNS()) {
+                node.add(getNumberNode(value));
             }
+            return node;
+        } else if (av.getBS() != null) {
+            final SetNode node = new SetNode(SetNode.SetType.BS);
+            for (final ByteBuffer value : av.getBS()) {
+                node.add(new ByteBufferNode(value));
+            }
+            return node;
         } else if (av.getBOOL() != null) {
             return JsonNodeFactory.instance.booleanNode(av.getBOOL());
         } else if (av.getNULL() != null) {
@@ -103,6 +120,90 @@ public class JacksonConverterImpl implements JacksonConverter {
         }
     }
 
+    /**
+     * Converts a DynamoDB number to a JSON number.
+     *
+     * @param n DynamoDB number
+     * @return JSON representation of the number
+     * @throws JacksonConverterException Not a number
+     */
+    private JsonNode getNumberNode(final String n) throws JacksonConverterException {
+        try {
+            return JsonNodeFactory.instance.numberNode(Integer.parseInt(n));
+        } catch (final NumberFormatException e) {
+            // Not an integer
+            try {
+                return JsonNodeFactory.instance.numberNode(Float.parseFloat(n));
+            } catch (final NumberFormatException e2) {
+                // Not a number
+                throw new JacksonConverterException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the buffer behind a binary JSON node, without copying when the node wraps a DynamoDB buffer.
+     *
+     * @param node Binary node, or text node holding base64
+     * @return Buffer holding the binary value
+     * @throws JacksonConverterException Node is not binary or not valid base64
+     */
+    private ByteBuffer getByteBuffer(final JsonNode node) throws JacksonConverterException {
+        if (node instanceof ByteBufferNode) {
+            return ((ByteBufferNode) node).byteBufferValue();
+        }
+        try {
+            final byte[] bytes = node.binaryValue();
+            if (bytes != null) {
+                return ByteBuffer.wrap(bytes);
+            }
+        } catch (final IOException e) {
+            throw new JacksonConverterException(e.getMessage());
+        }
+        throw new JacksonConverterException("Expected binary value, but received " + node);
+    }
+
+    /**
+     * Converts a {@link SetNode} back to the DynamoDB set it was converted from.
+     *
+     * @param node Set node
+     * @return DynamoDB set representation of the node
+     * @throws JacksonConverterException Element does not match the set type
+     */
+    private AttributeValue getSetAttributeValue(final SetNode node) throws JacksonConverterException {
+        switch (node.getSetType()) {
+            case SS: {
+                final List<String> values = new ArrayList<>();
+                for (final JsonNode child : node) {
+                    if (!child.isTextual()) {
+                        throw new JacksonConverterException("Expected string in SS, but received " + child);
+                    }
+                    values.add(child.textValue());
+                }
+                return new AttributeValue().withSS(values);
+            }
+            case NS: {
+                final List<String> values = new ArrayList<>();
+                for (final JsonNode child : node) {
+                    if (!child.isNumber()) {
+                        throw new JacksonConverterException("Expected number in NS, but received " + child);
+                    }
+                    values.add(child.numberValue().toString());
+                }
+                return new AttributeValue().withNS(values);
+            }
+            case BS: {
+                final List<ByteBuffer> values = new ArrayList<>();
+                for (final JsonNode child : node) {
+                    values.add(getByteBuffer(child));
+                }
+                return new AttributeValue().withBS(values);
+            }
+            default:
+                throw new JacksonConverterException("Unknown set type: " + node.getSetType());
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
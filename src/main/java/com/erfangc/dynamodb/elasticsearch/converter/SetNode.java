@@ -0,0 +1,43 @@
+package com.erfangc.dynamodb.elasticsearch.converter;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+/**
+ * JSON array converted from a DynamoDB SS, NS or BS attribute.
+ * <p>
+ * It serializes like any other array, but remembers the set type so that converting it back yields the same set
+ * instead of an L attribute.
+ */
+public class SetNode extends ArrayNode {
+
+    /**
+     * DynamoDB set types.
+     */
+    public enum SetType {
+        SS, NS, BS
+    }
+
+    /**
+     * Set type this array was converted from.
+     */
+    private final SetType setType;
+
+    /**
+     * Constructs an empty {@link SetNode}.
+     *
+     * @param setType
+     *            DynamoDB set type
+     */
+    public SetNode(final SetType setType) {
+        super(JsonNodeFactory.instance);
+        this.setType = setType;
+    }
+
+    /**
+     * @return DynamoDB set type this array was converted from
+     */
+    public SetType getSetType() {
+        return setType;
+    }
+}
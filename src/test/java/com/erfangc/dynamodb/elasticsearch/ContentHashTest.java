@@ -0,0 +1,55 @@
+package com.erfangc.dynamodb.elasticsearch;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.erfangc.dynamodb.elasticsearch.converter.JacksonConverterImpl;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ContentHashTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void ignoresFieldOrder() throws IOException {
+        JsonNode a = objectMapper.readTree("{\"id\":\"1\",\"nested\":{\"x\":1,\"y\":[1,2]}}");
+        JsonNode b = objectMapper.readTree("{\"nested\":{\"y\":[1,2],\"x\":1},\"id\":\"1\"}");
+        assertEquals(ContentHash.of(a), ContentHash.of(b));
+    }
+
+    @Test
+    public void detectsChanges() throws IOException {
+        JsonNode a = objectMapper.readTree("{\"id\":\"1\",\"list\":[1,2]}");
+        JsonNode b = objectMapper.readTree("{\"id\":\"1\",\"list\":[2,1]}");
+        assertNotEquals(ContentHash.of(a), ContentHash.of(b));
+    }
+
+    @Test
+    public void ignoresSetOrder() throws Exception {
+        JacksonConverterImpl converter = new JacksonConverterImpl();
+        Map<String, AttributeValue> a = new HashMap<>();
+        a.put("ss", new AttributeValue().withSS("x", "y"));
+        a.put("ns", new AttributeValue().withNS("1", "2.5"));
+        a.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[]{1}), ByteBuffer.wrap(new byte[]{2})));
+        Map<String, AttributeValue> b = new HashMap<>();
+        b.put("ss", new AttributeValue().withSS("y", "x"));
+        b.put("ns", new AttributeValue().withNS("2.5", "1"));
+        b.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[]{2}), ByteBuffer.wrap(new byte[]{1})));
+        assertEquals(ContentHash.of(converter.mapToJsonObject(a)), ContentHash.of(converter.mapToJsonObject(b)));
+    }
+
+    @Test
+    public void decodesStoredHash() throws IOException {
+        JsonNode payload = objectMapper.readTree("{\"id\":\"1\"}");
+        assertArrayEquals(ContentHash.digest(payload), ContentHash.decode(ContentHash.of(payload)));
+        assertNull(ContentHash.decode(null));
+        assertNull(ContentHash.decode("not a hash"));
+    }
+}
@@ -0,0 +1,153 @@
+package com.erfangc.dynamodb.elasticsearch;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Single table stand-in for DynamoDB, supporting just what {@link Reconciler} calls
+ * <p>
+ * Scans page one item at a time and segments by key hash. Items put with {@link #putAfterScan(Map)} are invisible to
+ * scans until {@link #revealAll()}, like items written after their segment was scanned. Re-reads go through
+ * BatchGetItem only
+ */
+public class InMemoryDynamoDB extends AbstractAmazonDynamoDB {
+
+    private static final int BATCH_GET_PROCESSED = 3;
+
+    private final TableDescription table = new TableDescription();
+    private final List<String> keyNames = new ArrayList<>();
+    private final Map<Map<String, AttributeValue>, Map<String, AttributeValue>> items = new ConcurrentHashMap<>();
+    private final Set<Map<String, AttributeValue>> hidden = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger batchGets = new AtomicInteger();
+
+    public InMemoryDynamoDB(String hashKey, String hashKeyType, String rangeKey, String rangeKeyType) {
+        table.withKeySchema(new KeySchemaElement(hashKey, KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition(hashKey, hashKeyType));
+        keyNames.add(hashKey);
+        if (rangeKey != null) {
+            table.withKeySchema(new KeySchemaElement(rangeKey, KeyType.RANGE))
+                    .withAttributeDefinitions(new AttributeDefinition(rangeKey, rangeKeyType));
+            keyNames.add(rangeKey);
+        }
+    }
+
+    public InMemoryDynamoDB put(Map<String, AttributeValue> item) {
+        items.put(keyOf(item), item);
+        return this;
+    }
+
+    public InMemoryDynamoDB putAfterScan(Map<String, AttributeValue> item) {
+        hidden.add(keyOf(item));
+        return put(item);
+    }
+
+    public InMemoryDynamoDB revealAll() {
+        hidden.clear();
+        return this;
+    }
+
+    private Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        for (String keyName : keyNames) {
+            key.put(keyName, item.get(keyName));
+        }
+        return key;
+    }
+
+    @Override
+    public DescribeTableResult describeTable(String tableName) {
+        return new DescribeTableResult().withTable(table);
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest request) {
+        List<Map<String, AttributeValue>> keys = items
+                .keySet()
+                .stream()
+                .filter(key -> !hidden.contains(key))
+                .filter(key -> Math.floorMod(key.hashCode(), request.getTotalSegments()) == request.getSegment())
+                .sorted(comparing(Replicator::getId))
+                .collect(toList());
+        int next = request.getExclusiveStartKey() == null ? 0 : keys.indexOf(request.getExclusiveStartKey()) + 1;
+        if (next >= keys.size()) {
+            return new ScanResult().withItems(new ArrayList<>()).withCount(0);
+        }
+        Map<String, AttributeValue> key = keys.get(next);
+        ScanResult result = new ScanResult().withItems(items.get(key)).withCount(1);
+        return next + 1 < keys.size() ? result.withLastEvaluatedKey(key) : result;
+    }
+
+    /**
+     * answers at most {@link #BATCH_GET_PROCESSED} keys per call and returns the rest as unprocessed, like a throttled table
+     */
+    @Override
+    public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+        batchGets.incrementAndGet();
+        Map.Entry<String, KeysAndAttributes> requested = request.getRequestItems().entrySet().iterator().next();
+        List<Map<String, AttributeValue>> keys = requested.getValue().getKeys();
+        keys.forEach(this::validate);
+        List<Map<String, AttributeValue>> found = new ArrayList<>();
+        for (Map<String, AttributeValue> key : keys.subList(0, Math.min(BATCH_GET_PROCESSED, keys.size()))) {
+            Map<String, AttributeValue> item = items.get(new HashMap<>(key));
+            if (item != null) {
+                found.add(item);
+            }
+        }
+        BatchGetItemResult result = new BatchGetItemResult()
+                .withResponses(Collections.singletonMap(requested.getKey(), found))
+                .withUnprocessedKeys(new HashMap<>());
+        if (keys.size() > BATCH_GET_PROCESSED) {
+            result.getUnprocessedKeys().put(requested.getKey(), new KeysAndAttributes()
+                    .withKeys(keys.subList(BATCH_GET_PROCESSED, keys.size()))
+                    .withConsistentRead(requested.getValue().getConsistentRead()));
+        }
+        return result;
+    }
+
+    public int batchGets() {
+        return batchGets.get();
+    }
+
+    /**
+     * rejects keys DynamoDB would reject, such as N values that are not numbers
+     */
+    private void validate(Map<String, AttributeValue> key) {
+        for (AttributeValue value : key.values()) {
+            if (value.getN() != null) {
+                try {
+                    new BigDecimal(value.getN());
+                } catch (NumberFormatException e) {
+                    AmazonDynamoDBException exception = new AmazonDynamoDBException(
+                            "The parameter cannot be converted to a numeric value: " + value.getN());
+                    exception.setErrorCode("ValidationException");
+                    exception.setStatusCode(400);
+                    throw exception;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.erfangc.dynamodb.elasticsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single index stand-in for Elasticsearch, speaking just enough of the REST API for {@link Reconciler}
+ * <p>
+ * _search honours size, search_after and _source includes, always sorting by _id. _bulk applies index and delete
+ * actions
+ */
+public class InMemoryElasticsearch implements Closeable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final NavigableMap<String, ObjectNode> documents = new TreeMap<>();
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger bulks = new AtomicInteger();
+    private final String index;
+    private final HttpServer server;
+
+    public InMemoryElasticsearch(String index) throws IOException {
+        this.index = index;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public RestHighLevelClient client() {
+        return new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", server.getAddress().getPort(), "http")));
+    }
+
+    public synchronized InMemoryElasticsearch put(String id, ObjectNode source) {
+        documents.put(id, source);
+        return this;
+    }
+
+    public synchronized Map<String, ObjectNode> documents() {
+        return new TreeMap<>(documents);
+    }
+
+    public int searches() {
+        return searches.get();
+    }
+
+    public int bulks() {
+        return bulks.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = read(exchange.getRequestBody());
+        JsonNode response;
+        synchronized (this) {
+            if (path.endsWith("/_search")) {
+                searches.incrementAndGet();
+                response = search(objectMapper.readTree(body));
+            } else if (path.endsWith("/_bulk")) {
+                bulks.incrementAndGet();
+                response = bulk(new String(body, StandardCharsets.UTF_8));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+        }
+        byte[] bytes = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private JsonNode search(JsonNode request) {
+        int size = request.path("size").asInt(10);
+        JsonNode searchAfter = request.path("search_after");
+        NavigableMap<String, ObjectNode> page = searchAfter.size() == 0
+                ? documents
+                : documents.tailMap(searchAfter.get(0).asText(), false);
+        JsonNode includes = request.path("_source").path("includes");
+
+        ArrayNode hits = JsonNodeFactory.instance.arrayNode();
+        for (Map.Entry<String, ObjectNode> document : page.entrySet()) {
+            if (hits.size() == size) {
+                break;
+            }
+            ObjectNode source = JsonNodeFactory.instance.objectNode();
+            if (includes.size() == 0) {
+                source.setAll(document.getValue());
+            }
+            for (JsonNode include : includes) {
+                if (document.getValue().has(include.asText())) {
+                    source.set(include.asText(), document.getValue().get(include.asText()));
+                }
+            }
+            ObjectNode hit = hits.addObject()
+                    .put("_index", index)
+                    .put("_type", "_doc")
+                    .put("_id", document.getKey())
+                    .putNull("_score");
+            hit.set("_source", source);
+            hit.putArray("sort").add(document.getKey());
+        }
+
+        ObjectNode response = JsonNodeFactory.instance.objectNode().put("took", 1).put("timed_out", false);
+        response.putObject("_shards").put("total", 1).put("successful", 1).put("skipped", 0).put("failed", 0);
+        ObjectNode hitsNode = response.putObject("hits");
+        hitsNode.putObject("total").put("value", documents.size()).put("relation", "eq");
+        hitsNode.putNull("max_score");
+        hitsNode.set("hits", hits);
+        return response;
+    }
+
+    private JsonNode bulk(String body) throws IOException {
+        ArrayNode items = JsonNodeFactory.instance.arrayNode();
+        String[] lines = body.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isEmpty()) {
+                continue;
+            }
+            JsonNode action = objectMapper.readTree(lines[i]);
+            String opType = action.fieldNames().next();
+            String id = action.get(opType).get("_id").asText();
+            String result;
+            if ("delete".equals(opType)) {
+                result = documents.remove(id) == null ? "not_found" : "deleted";
+            } else {
+                result = documents.put(id, (ObjectNode) objectMapper.readTree(lines[++i])) == null ? "created" : "updated";
+            }
+            ObjectNode item = items.addObject().putObject(opType)
+                    .put("_index", index)
+                    .put("_type", "_doc")
+                    .put("_id", id)
+                    .put("_version", 1)
+                    .put("result", result)
+                    .put("_seq_no", 0)
+                    .put("_primary_term", 1)
+                    .put("status", "created".equals(result) ? 201 : "not_found".equals(result) ? 404 : 200);
+            item.putObject("_shards").put("total", 1).put("successful", 1).put("failed", 0);
+        }
+        ObjectNode response = JsonNodeFactory.instance.objectNode().put("took", 1).put("errors", false);
+        response.set("items", items);
+        return response;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
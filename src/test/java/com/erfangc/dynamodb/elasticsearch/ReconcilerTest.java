@@ -0,0 +1,133 @@
+package com.erfangc.dynamodb.elasticsearch;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.erfangc.dynamodb.elasticsearch.converter.JacksonConverterImpl;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class ReconcilerTest {
+
+    private final JacksonConverterImpl converter = new JacksonConverterImpl();
+
+    private static Map<String, AttributeValue> item(String... attributes) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        for (int i = 0; i < attributes.length; i += 3) {
+            AttributeValue value = "N".equals(attributes[i + 1])
+                    ? new AttributeValue().withN(attributes[i + 2])
+                    : new AttributeValue().withS(attributes[i + 2]);
+            item.put(attributes[i], value);
+        }
+        return item;
+    }
+
+    private ObjectNode document(Map<String, AttributeValue> item) throws Exception {
+        ObjectNode document = (ObjectNode) converter.mapToJsonObject(item);
+        return document.put(ContentHash.FIELD, ContentHash.of(converter.mapToJsonObject(item)));
+    }
+
+    @Test
+    public void reconcileAndRepair() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB("Id", "N", null, null)
+                .put(item("Id", "N", "1", "name", "S", "in sync"))
+                .put(item("Id", "N", "2", "name", "S", "missing"))
+                .put(item("Id", "N", "3", "name", "S", "divergent"))
+                .put(item("Id", "N", "5", "name", "N", "not a number"))
+                .put(item("Id", "N", "7", "name", "S", "in sync"))
+                .putAfterScan(item("Id", "N", "6", "name", "S", "written after the scan"));
+
+        try (InMemoryElasticsearch elasticsearch = new InMemoryElasticsearch("items");
+             RestHighLevelClient client = elasticsearch.client()) {
+            elasticsearch
+                    .put("1", document(item("Id", "N", "1", "name", "S", "in sync")))
+                    .put("3", document(item("Id", "N", "3", "name", "S", "stale")))
+                    .put("4", document(item("Id", "N", "4", "name", "S", "deleted from the table")))
+                    .put("5", JsonNodeFactory.instance.objectNode().put("Id", 5))
+                    .put("6", document(item("Id", "N", "6", "name", "S", "written after the scan")))
+                    .put("7", document(item("Id", "N", "7", "name", "S", "in sync")));
+
+            // 6 documents over pages of 2, so the last page is full and an empty one ends the stream
+            Reconciler reconciler = new Reconciler(dynamoDB, client, "items", "items", 2, 2);
+            DriftReport report = reconciler.reconcile(true);
+
+            assertEquals(5, report.getScanned());
+            assertEquals(Collections.singletonList("2"), report.getMissing());
+            assertEquals(Collections.singletonList("3"), report.getDivergent());
+            assertEquals(asList("4", "6"), report.getExtra());
+            assertEquals(Collections.singletonList("5"), report.getUnconvertible());
+            assertEquals(4, elasticsearch.searches());
+            // 4 repairs re-read in one batch, answered over 2 calls, and flushed in bulk requests of 2
+            assertEquals(4, report.getRepaired());
+            assertEquals(2, dynamoDB.batchGets());
+            assertEquals(2, elasticsearch.bulks());
+
+            Map<String, ObjectNode> documents = elasticsearch.documents();
+            assertEquals(asList("1", "2", "3", "5", "6", "7"), new ArrayList<>(documents.keySet()));
+            assertEquals(document(item("Id", "N", "2", "name", "S", "missing")), documents.get("2"));
+            assertEquals(document(item("Id", "N", "3", "name", "S", "divergent")), documents.get("3"));
+            assertEquals(document(item("Id", "N", "6", "name", "S", "written after the scan")), documents.get("6"));
+            assertEquals(JsonNodeFactory.instance.objectNode().put("Id", 5), documents.get("5"));
+
+            dynamoDB.revealAll();
+            DriftReport after = reconciler.reconcile(false);
+            assertTrue(after.getMissing().isEmpty());
+            assertTrue(after.getDivergent().isEmpty());
+            assertTrue(after.getExtra().isEmpty());
+        }
+    }
+
+    @Test
+    public void compositeKeysContainingSeparator() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB("sk", "S", "pk", "S")
+                .put(item("pk", "S", "a:b", "sk", "S", "c", "name", "S", "missing"))
+                .putAfterScan(item("pk", "S", "x:y", "sk", "S", "z", "name", "S", "written after the scan"));
+
+        try (InMemoryElasticsearch elasticsearch = new InMemoryElasticsearch("items");
+             RestHighLevelClient client = elasticsearch.client()) {
+            elasticsearch
+                    .put("x:y:z", document(item("pk", "S", "x:y", "sk", "S", "z", "name", "S", "written after the scan")))
+                    .put("gone:1", document(item("pk", "S", "gone", "sk", "S", "1")))
+                    .put("p:q", JsonNodeFactory.instance.objectNode().put("name", "no key attributes"));
+
+            DriftReport report = new Reconciler(dynamoDB, client, "items", "items", 1, 10).reconcile(true);
+
+            assertEquals(Collections.singletonList("a:b:c"), report.getMissing());
+            assertEquals(asList("gone:1", "p:q", "x:y:z"), report.getExtra());
+            // p:q has no key attributes to re-check against, so it is left alone rather than deleted
+            assertEquals(3, report.getRepaired());
+
+            Map<String, ObjectNode> documents = elasticsearch.documents();
+            assertEquals(asList("a:b:c", "p:q", "x:y:z"), new ArrayList<>(documents.keySet()));
+            assertEquals(document(item("pk", "S", "a:b", "sk", "S", "c", "name", "S", "missing")), documents.get("a:b:c"));
+        }
+    }
+
+    @Test
+    public void extraWithUnparseableNumericKeyIsSkipped() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB("Id", "N", null, null)
+                .put(item("Id", "N", "1", "name", "S", "missing"));
+
+        try (InMemoryElasticsearch elasticsearch = new InMemoryElasticsearch("items");
+             RestHighLevelClient client = elasticsearch.client()) {
+            // N keys used to be indexed under "null", which is not a valid key to re-check against
+            elasticsearch
+                    .put("null", JsonNodeFactory.instance.objectNode().put("Id", 2))
+                    .put("4", document(item("Id", "N", "4", "name", "S", "deleted from the table")));
+
+            DriftReport report = new Reconciler(dynamoDB, client, "items", "items", 1, 10).reconcile(true);
+
+            assertEquals(asList("4", "null"), report.getExtra());
+            assertEquals(2, report.getRepaired());
+            assertEquals(asList("1", "null"), new ArrayList<>(elasticsearch.documents().keySet()));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.erfangc.dynamodb.elasticsearch;
 
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
@@ -7,7 +8,10 @@ import org.junit.Test;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
 import static java.util.stream.Collectors.joining;
@@ -24,4 +28,19 @@ public class ReplicatorTest {
 //        DynamodbEvent event = AWSDeserializer.deserializeDynamoEvents(json);
 //        replicator.handle(event, null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getIdIsCanonical() {
+        Map<String, AttributeValue> keys = new LinkedHashMap<>();
+        keys.put("sk", new AttributeValue().withN("42"));
+        keys.put("pk", new AttributeValue().withS("a:b"));
+        assertEquals("a:b:42", Replicator.getId(keys));
+
+        Map<String, AttributeValue> reversed = new LinkedHashMap<>();
+        reversed.put("pk", new AttributeValue().withS("a:b"));
+        reversed.put("sk", new AttributeValue().withN("42"));
+        assertEquals(Replicator.getId(keys), Replicator.getId(reversed));
+
+        assertEquals("AQI=", Replicator.getId(Collections.singletonMap("Id", new AttributeValue().withB(ByteBuffer.wrap(new byte[]{1, 2})))));
+    }
+}
@@ -0,0 +1,70 @@
+package com.erfangc.dynamodb.elasticsearch.converter;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class JacksonConverterImplTest {
+
+    private final JacksonConverterImpl converter = new JacksonConverterImpl();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void binaryAndSetsToJson() throws Exception {
+        ByteBuffer direct = ByteBuffer.allocateDirect(3);
+        direct.put("abc".getBytes(StandardCharsets.UTF_8)).flip();
+        ByteBuffer sliced = ByteBuffer.wrap("xxhello".getBytes(StandardCharsets.UTF_8));
+        sliced.position(2);
+
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("heap", new AttributeValue().withB(sliced.slice()));
+        item.put("direct", new AttributeValue().withB(direct));
+        item.put("ss", new AttributeValue().withSS("a", "b"));
+        item.put("ns", new AttributeValue().withNS("1", "2.5"));
+        item.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[]{1, 2})));
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsBytes(converter.mapToJsonObject(item)));
+        assertEquals("aGVsbG8=", json.get("heap").textValue());
+        assertEquals("YWJj", json.get("direct").textValue());
+        assertEquals(objectMapper.readTree("[\"a\",\"b\"]"), json.get("ss"));
+        assertEquals(objectMapper.readTree("[1,2.5]"), json.get("ns"));
+        assertEquals(objectMapper.readTree("[\"AQI=\"]"), json.get("bs"));
+        assertEquals(3, direct.remaining());
+    }
+
+    @Test
+    public void binaryAndSetsRoundTrip() throws Exception {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("b", new AttributeValue().withB(ByteBuffer.wrap(new byte[]{0, 1, 2})));
+        item.put("ss", new AttributeValue().withSS("a", "b"));
+        item.put("ns", new AttributeValue().withNS("1", "2.5"));
+        item.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[]{1, 2}), ByteBuffer.wrap(new byte[]{3})));
+        item.put("l", new AttributeValue().withL(new AttributeValue().withS("a")));
+
+        Map<String, AttributeValue> roundTripped = converter.jsonObjectToMap(converter.mapToJsonObject(item));
+        assertEquals(item, roundTripped);
+    }
+
+    @Test
+    public void plainArraysStayLists() throws Exception {
+        Map<String, AttributeValue> item = converter.jsonObjectToMap(objectMapper.readTree("{\"a\":[\"x\",\"y\"]}"));
+        assertEquals(asList(new AttributeValue().withS("x"), new AttributeValue().withS("y")), item.get("a").getL());
+    }
+
+    @Test(expected = JacksonConverterException.class)
+    public void stringSetRejectsNonText() throws Exception {
+        SetNode node = new SetNode(SetNode.SetType.SS);
+        node.add("a").add(1);
+        converter.jsonObjectToMap(JsonNodeFactory.instance.objectNode().set("ss", node));
+    }
+}